@@ -0,0 +1,260 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.ParseException;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses commands and runs the handler registered for them asynchronously.
+ * <p/>
+ * The first argument names the command; the remaining arguments are parsed on the calling
+ * thread with the OptionHandler registered for that command, and the handler then runs on
+ * the executor. At most <code>maxConcurrency</code> handlers run at once and at most
+ * <code>queueCapacity</code> more wait for a slot; further dispatches are rejected with a
+ * RejectedExecutionException until a slot frees up.
+ * <p/>
+ * Unless an executor is given, handlers run on virtual threads when the JVM supports them
+ * and on a pool of <code>maxConcurrency</code> daemon threads otherwise.
+ *
+ * @param <T> the type of the commands' results
+ */
+public class CommandDispatcher<T> {
+    private final ConcurrentMap<String, Registration<T>> registrations = new ConcurrentHashMap<String, Registration<T>>();
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore admitted;
+    private final Semaphore running;
+    private volatile boolean shutdown;
+    private ScheduledThreadPoolExecutor timer;
+
+    public CommandDispatcher(int maxConcurrency, int queueCapacity) {
+        this(defaultExecutor(maxConcurrency), true, maxConcurrency, queueCapacity);
+    }
+
+    public CommandDispatcher(ExecutorService executor, int maxConcurrency, int queueCapacity) {
+        this(executor, false, maxConcurrency, queueCapacity);
+    }
+
+    private CommandDispatcher(ExecutorService executor, boolean ownsExecutor, int maxConcurrency, int queueCapacity) {
+        if (maxConcurrency <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Concurrency must be positive and queue capacity not negative");
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.admitted = new Semaphore(maxConcurrency + queueCapacity);
+        this.running = new Semaphore(maxConcurrency);
+    }
+
+    public CommandDispatcher<T> register(String command, OptionHandler optionHandler, CommandHandler<T> handler) {
+        if (command == null || optionHandler == null || handler == null) {
+            throw new IllegalArgumentException("Command, option handler and handler must be provided");
+        }
+        registrations.put(command, new Registration<T>(optionHandler, handler));
+        return this;
+    }
+
+    public Future<T> dispatch(String[] args) throws ParseException {
+        return dispatch(args, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Parse <code>args</code> and run the matching handler, cancelling it if it has not
+     * completed within <code>timeout</code>. A timeout of zero or less means no timeout.
+     *
+     * @throws ParseException if the command is unknown or its options are invalid
+     * @throws RejectedExecutionException if the dispatcher is saturated or shut down
+     * @throws IllegalArgumentException if a timeout is given without a time unit
+     */
+    public Future<T> dispatch(String[] args, long timeout, TimeUnit unit) throws ParseException {
+        if (timeout > 0 && unit == null) {
+            throw new IllegalArgumentException("A time unit must be provided with a timeout");
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("Dispatcher has been shut down");
+        }
+        if (args == null || args.length == 0) {
+            throw new ParseException("No command provided");
+        }
+        final Registration<T> registration = registrations.get(args[0]);
+        if (registration == null) {
+            throw new ParseException("Unknown command: " + args[0]);
+        }
+        final OptionValues values = registration.parse(Arrays.copyOfRange(args, 1, args.length));
+
+        if (!admitted.tryAcquire()) {
+            throw new RejectedExecutionException("Too many commands in flight");
+        }
+        final DispatchTask task = new DispatchTask(registration.handler, values);
+        try {
+            if (timeout > 0) {
+                task.timeout = timer().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        task.cancel(true);
+                    }
+                }, timeout, unit);
+            }
+            submit(task);
+        } catch (RuntimeException e) {
+            // cancelling the unstarted task releases its admission permit
+            task.cancel(false);
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Stop accepting commands; commands already dispatched still run and are still cancelled
+     * when their timeout expires. The executor is only shut down if the dispatcher created it.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            if (timer != null) {
+                // pending timeouts still fire after shutdown; the timer stops once they are done
+                timer.shutdown();
+                timer.purge();
+            }
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized void submit(Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Dispatcher has been shut down");
+        }
+        executor.execute(task);
+    }
+
+    private synchronized ScheduledExecutorService timer() {
+        if (shutdown) {
+            throw new RejectedExecutionException("Dispatcher has been shut down");
+        }
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, daemonThreads("command-dispatcher-timeout"));
+        }
+        return timer;
+    }
+
+    /**
+     * Drop cancelled timeouts once shut down, so the timer can stop as soon as the commands
+     * still in flight have finished.
+     */
+    private synchronized void purgeTimer() {
+        if (shutdown && timer != null) {
+            timer.purge();
+        }
+    }
+
+    private static ExecutorService defaultExecutor(int maxConcurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return Executors.newFixedThreadPool(Math.max(1, maxConcurrency), daemonThreads("command-dispatcher"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static final class Registration<T> {
+        private final OptionHandler optionHandler;
+        private final CommandHandler<T> handler;
+
+        private Registration(OptionHandler optionHandler, CommandHandler<T> handler) {
+            this.optionHandler = optionHandler;
+            this.handler = handler;
+        }
+
+        private OptionValues parse(String[] args) throws ParseException {
+            // OptionHandler and its parser keep per-parse state, so bind the values while locked
+            synchronized (optionHandler) {
+                optionHandler.parse(args);
+                return optionHandler.getValues();
+            }
+        }
+    }
+
+    /**
+     * Holds an admission permit from dispatch until the handler has finished. Whichever of
+     * the handler starting or the task being cancelled beforehand claims the task first
+     * releases the permit, so that it is released exactly once and before get() returns.
+     */
+    private final class DispatchTask extends FutureTask<T> {
+        private final AtomicBoolean claimed;
+        private volatile ScheduledFuture<?> timeout;
+
+        private DispatchTask(CommandHandler<T> handler, OptionValues values) {
+            this(handler, values, new AtomicBoolean());
+        }
+
+        private DispatchTask(final CommandHandler<T> handler, final OptionValues values, final AtomicBoolean claimed) {
+            super(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return null;
+                    }
+                    try {
+                        running.acquire();
+                        try {
+                            return handler.execute(values);
+                        } finally {
+                            running.release();
+                        }
+                    } finally {
+                        admitted.release();
+                    }
+                }
+            });
+            this.claimed = claimed;
+        }
+
+        @Override
+        protected void done() {
+            if (claimed.compareAndSet(false, true)) {
+                admitted.release();
+            }
+            final ScheduledFuture<?> pending = timeout;
+            if (pending != null) {
+                pending.cancel(false);
+                purgeTimer();
+            }
+        }
+    }
+}
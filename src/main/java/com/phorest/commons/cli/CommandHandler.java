@@ -0,0 +1,19 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+/**
+ * Executes a command registered with a CommandDispatcher. The handler receives the values
+ * of its own dispatch, including defaults, regardless of other commands parsed meanwhile.
+ *
+ * @param <T> the type of the command's result
+ */
+public interface CommandHandler<T> {
+    T execute(OptionValues values) throws Exception;
+}
@@ -0,0 +1,80 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Copies CommandLines. A CommandLine is mutable through its live argument list and its
+ * Options' setters, but commons-cli only lets its parsers build one, so the copy is made
+ * through the package-private constructor and adders.
+ */
+final class CommandLines {
+    private static final Constructor<CommandLine> CONSTRUCTOR;
+    private static final Method ADD_ARG;
+    private static final Method ADD_OPTION;
+    private static final Exception FAILURE;
+
+    static {
+        Constructor<CommandLine> constructor = null;
+        Method addArg = null;
+        Method addOption = null;
+        Exception failure = null;
+        try {
+            constructor = CommandLine.class.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            addArg = CommandLine.class.getDeclaredMethod("addArg", String.class);
+            addArg.setAccessible(true);
+            addOption = CommandLine.class.getDeclaredMethod("addOption", Option.class);
+            addOption.setAccessible(true);
+        } catch (Exception e) {
+            failure = e;
+        }
+        CONSTRUCTOR = constructor;
+        ADD_ARG = addArg;
+        ADD_OPTION = addOption;
+        FAILURE = failure;
+    }
+
+    private CommandLines() {
+        // do nothing
+    }
+
+    /**
+     * @throws IllegalStateException if CommandLines cannot be copied in this environment
+     */
+    static void checkSupported() {
+        if (FAILURE != null) {
+            throw new IllegalStateException("CommandLine cannot be copied", FAILURE);
+        }
+    }
+
+    /**
+     * @return a CommandLine with the same arguments and copies of the same options
+     */
+    static CommandLine copy(CommandLine source) {
+        checkSupported();
+        try {
+            final CommandLine copy = CONSTRUCTOR.newInstance();
+            for (Object arg : source.getArgList()) {
+                ADD_ARG.invoke(copy, arg);
+            }
+            for (Option option : source.getOptions()) {
+                ADD_OPTION.invoke(copy, option.clone());
+            }
+            return copy;
+        } catch (Exception e) {
+            throw new IllegalStateException("CommandLine cannot be copied", e);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.ParseException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a raw command string into arguments using POSIX shell quoting rules,
+ * so that commands arriving as a single string (queue messages, socket frames)
+ * can be handed to the parser without a hand rolled split.
+ * <p/>
+ * The input is scanned in place. An argument that is a plain run of the input is taken
+ * straight from that range; only arguments containing quotes or escapes are assembled in
+ * a scratch buffer first. Encoded input is scanned byte by byte, which is safe because every
+ * delimiter, quote and escape is a single byte in UTF-8, and only argument ranges are decoded.
+ * <ul>
+ * <li>unquoted whitespace separates arguments</li>
+ * <li>a backslash outside quotes escapes the next character, backslash-newline is removed</li>
+ * <li>characters inside single quotes are taken literally</li>
+ * <li>inside double quotes a backslash only escapes <code>$ ` " \</code> and newline</li>
+ * </ul>
+ */
+public final class CommandTokenizer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CommandTokenizer() {
+        // do nothing
+    }
+
+    /**
+     * Tokenize a UTF-8 encoded command from its position to its limit. The buffer's
+     * position is left untouched.
+     *
+     * @param command the encoded command, may be null (cast a literal null to pick this overload)
+     * @return the arguments of the command
+     * @throws ParseException if the command is not valid UTF-8 or its quoting is unbalanced
+     */
+    public static String[] tokenize(ByteBuffer command) throws ParseException {
+        return command == null ? new String[0] : tokenize(new ByteSource(command));
+    }
+
+    /**
+     * Tokenize a command.
+     *
+     * @param command the command, may be null (cast a literal null to pick this overload)
+     * @return the arguments of the command
+     * @throws ParseException if the quoting of the command is unbalanced
+     */
+    public static String[] tokenize(CharSequence command) throws ParseException {
+        return command == null ? new String[0] : tokenize(new CharSource(command));
+    }
+
+    private static String[] tokenize(Source source) throws ParseException {
+        final int length = source.length();
+        final List<String> args = new ArrayList<String>();
+        boolean inToken = false;
+        int i = 0;
+        while (i < length) {
+            final char c = source.charAt(i++);
+            switch (c) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    if (inToken) {
+                        args.add(source.take());
+                        inToken = false;
+                    }
+                    break;
+                case '\'': {
+                    final int close = indexOf(source, '\'', i);
+                    if (close < 0) {
+                        throw new ParseException("Unterminated single quote at position " + (i - 1));
+                    }
+                    source.append(i, close);
+                    i = close + 1;
+                    inToken = true;
+                    break;
+                }
+                case '"':
+                    i = readDoubleQuoted(source, i);
+                    inToken = true;
+                    break;
+                case '\\':
+                    if (i >= length) {
+                        throw new ParseException("Dangling escape at end of command");
+                    }
+                    if (source.charAt(i) != '\n') {
+                        source.append(i, i + 1);
+                        inToken = true;
+                    }
+                    i++;
+                    break;
+                default:
+                    source.append(i - 1, i);
+                    inToken = true;
+            }
+        }
+        if (inToken) {
+            args.add(source.take());
+        }
+        return args.toArray(new String[args.size()]);
+    }
+
+    private static int readDoubleQuoted(Source source, int start) throws ParseException {
+        final int length = source.length();
+        int i = start;
+        while (i < length) {
+            final char c = source.charAt(i++);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\' && i < length) {
+                final char next = source.charAt(i);
+                if (next == '$' || next == '`' || next == '"' || next == '\\') {
+                    source.append(i, i + 1);
+                    i++;
+                    continue;
+                }
+                if (next == '\n') {
+                    i++;
+                    continue;
+                }
+            }
+            source.append(i - 1, i);
+        }
+        throw new ParseException("Unterminated double quote at position " + (start - 1));
+    }
+
+    private static int indexOf(Source source, char c, int from) {
+        for (int i = from, length = source.length(); i < length; i++) {
+            if (source.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The input being tokenized. Appended ranges that directly follow each other are only
+     * tracked as a range; a scratch copy is made once an argument stops being contiguous.
+     */
+    private abstract static class Source {
+        private int start = -1;
+        private int end;
+        private boolean scratched;
+
+        abstract int length();
+
+        /**
+         * @return the character at <code>index</code>, or for encoded input the byte, which
+         *         is only meaningful for the single byte characters the tokenizer looks for
+         */
+        abstract char charAt(int index);
+
+        abstract void copyToScratch(int from, int to);
+
+        abstract String takeRange(int from, int to) throws ParseException;
+
+        abstract String takeScratch() throws ParseException;
+
+        final void append(int from, int to) {
+            if (scratched) {
+                copyToScratch(from, to);
+            } else if (start < 0) {
+                start = from;
+                end = to;
+            } else if (from == end) {
+                end = to;
+            } else {
+                copyToScratch(start, end);
+                copyToScratch(from, to);
+                scratched = true;
+            }
+        }
+
+        final String take() throws ParseException {
+            final String token = scratched ? takeScratch() : start < 0 ? "" : takeRange(start, end);
+            start = -1;
+            scratched = false;
+            return token;
+        }
+    }
+
+    private static final class CharSource extends Source {
+        private final CharSequence command;
+        private final StringBuilder scratch = new StringBuilder();
+
+        private CharSource(CharSequence command) {
+            this.command = command;
+        }
+
+        @Override
+        int length() {
+            return command.length();
+        }
+
+        @Override
+        char charAt(int index) {
+            return command.charAt(index);
+        }
+
+        @Override
+        void copyToScratch(int from, int to) {
+            scratch.append(command, from, to);
+        }
+
+        @Override
+        String takeRange(int from, int to) {
+            return command.subSequence(from, to).toString();
+        }
+
+        @Override
+        String takeScratch() {
+            final String token = scratch.toString();
+            scratch.setLength(0);
+            return token;
+        }
+    }
+
+    private static final class ByteSource extends Source {
+        private final ByteBuffer command;
+        private final int base;
+        private final int length;
+        private final CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        private byte[] scratch = new byte[32];
+        private int scratchLength;
+
+        private ByteSource(ByteBuffer command) {
+            this.command = command;
+            this.base = command.position();
+            this.length = command.remaining();
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        char charAt(int index) {
+            return (char) (command.get(base + index) & 0xFF);
+        }
+
+        @Override
+        void copyToScratch(int from, int to) {
+            final int needed = scratchLength + to - from;
+            if (needed > scratch.length) {
+                scratch = Arrays.copyOf(scratch, Math.max(needed, scratch.length * 2));
+            }
+            for (int i = from; i < to; i++) {
+                scratch[scratchLength++] = command.get(base + i);
+            }
+        }
+
+        @Override
+        String takeRange(int from, int to) throws ParseException {
+            final ByteBuffer range = command.duplicate();
+            range.limit(base + to);
+            range.position(base + from);
+            return decode(range);
+        }
+
+        @Override
+        String takeScratch() throws ParseException {
+            final String token = decode(ByteBuffer.wrap(scratch, 0, scratchLength));
+            scratchLength = 0;
+            return token;
+        }
+
+        private String decode(ByteBuffer bytes) throws ParseException {
+            try {
+                return decoder.decode(bytes).toString();
+            } catch (CharacterCodingException e) {
+                throw new ParseException("Command is not valid UTF-8: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+/**
+ * The default value of an option. A supplied default is computed at most once,
+ * the first time it is read, and is safe to read from several threads.
+ */
+final class DefaultValue {
+    private final Supplier<String> supplier;
+    private volatile boolean resolved;
+    private String value;
+
+    private DefaultValue(Supplier<String> supplier, String value, boolean resolved) {
+        this.supplier = supplier;
+        this.value = value;
+        this.resolved = resolved;
+    }
+
+    static DefaultValue of(String value) {
+        return new DefaultValue(null, value, true);
+    }
+
+    static DefaultValue lazy(Supplier<String> supplier) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("Default value supplier must not be null");
+        }
+        return new DefaultValue(supplier, null, false);
+    }
+
+    boolean isResolved() {
+        return resolved;
+    }
+
+    String get() {
+        if (!resolved) {
+            synchronized (this) {
+                if (!resolved) {
+                    value = supplier.get();
+                    resolved = true;
+                }
+            }
+        }
+        return value;
+    }
+}
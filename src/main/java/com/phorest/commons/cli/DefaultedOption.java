@@ -0,0 +1,42 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.Option;
+
+/**
+ * An Option carrying a default value.
+ */
+class DefaultedOption extends Option {
+    private final DefaultValue defaultValue;
+
+    DefaultedOption(String shortName, String description, DefaultValue defaultValue) {
+        super(shortName, description);
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Typed as Option so that callers do not load this class unless a default is used.
+     */
+    static Option create(String shortName, String description, DefaultValue defaultValue) {
+        return new DefaultedOption(shortName, description, defaultValue);
+    }
+
+    String getDefaultValue() {
+        return defaultValue.get();
+    }
+
+    /**
+     * @return the default for display, without computing a supplied default that has not
+     *         been read yet
+     */
+    String describeDefault() {
+        return defaultValue.isResolved() ? defaultValue.get() : "computed when needed";
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.ParseException;
+
+import java.util.Arrays;
+
+/**
+ * Decodes option values into primitive arrays. Each value may hold several comma separated
+ * numbers, and integral values may use inclusive ranges, e.g. <code>1,2,5-9</code>.
+ * Numbers are read straight from the value Strings without creating substrings or boxes.
+ * <p/>
+ * A short range can stand for a huge number of values, so the total number of values
+ * decoded for one option is limited.
+ */
+final class NumericValues {
+    static final int DEFAULT_LIMIT = 1000000;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private NumericValues() {
+        // do nothing
+    }
+
+    static int[] decodeInts(String[] values, int limit) throws ParseException {
+        final IntSink sink = new IntSink(values.length);
+        final int size = decodeIntegral(values, sink, limit);
+        return size == sink.values.length ? sink.values : Arrays.copyOf(sink.values, size);
+    }
+
+    static long[] decodeLongs(String[] values, int limit) throws ParseException {
+        final LongSink sink = new LongSink(values.length);
+        final int size = decodeIntegral(values, sink, limit);
+        return size == sink.values.length ? sink.values : Arrays.copyOf(sink.values, size);
+    }
+
+    /**
+     * Scans the numbers and ranges in <code>values</code> into <code>sink</code>.
+     *
+     * @return the number of values stored
+     * @throws ParseException if a value is invalid or there are more than <code>limit</code> values
+     */
+    private static int decodeIntegral(String[] values, IntegralSink sink, int limit) throws ParseException {
+        int size = 0;
+        for (String value : values) {
+            int start = 0;
+            while (start <= value.length()) {
+                final int end = elementEnd(value, start);
+                final int from = skipSpaces(value, start, end);
+                final int to = trimSpaces(value, from, end);
+                final int dash = indexOf(value, '-', from + 1, to);
+                final long low = parseLong(value, from, dash < 0 ? to : trimSpaces(value, from, dash),
+                        sink.min, sink.max);
+                final long high = dash < 0 ? low : parseLong(value, skipSpaces(value, dash + 1, to), to,
+                        sink.min, sink.max);
+                final int count = (int) checkRange(value, from, to, low, high, size, limit);
+                if (size + count > sink.capacity()) {
+                    sink.resize(grow(size, count, limit));
+                }
+                sink.store(size, low, count);
+                size += count;
+                start = end + 1;
+            }
+        }
+        return size;
+    }
+
+    static double[] decodeDoubles(String[] values, int limit) throws ParseException {
+        double[] result = new double[values.length];
+        int size = 0;
+        for (String value : values) {
+            int start = 0;
+            while (start <= value.length()) {
+                final int end = elementEnd(value, start);
+                final int from = skipSpaces(value, start, end);
+                final int to = trimSpaces(value, from, end);
+                if (from == to) {
+                    throw new ParseException("Missing number in \"" + value + "\"");
+                }
+                if (size == limit) {
+                    throw tooManyValues(limit);
+                }
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, grow(size, 1, limit));
+                }
+                try {
+                    result[size++] = Double.parseDouble(value.substring(from, to));
+                } catch (NumberFormatException e) {
+                    throw new ParseException("Invalid number \"" + value.substring(from, to) + "\"");
+                }
+                start = end + 1;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return the number of values in the range <code>low-high</code>
+     */
+    private static long checkRange(String value, int from, int to, long low, long high, int size, int limit)
+            throws ParseException {
+        if (high < low) {
+            throw new ParseException("Invalid range \"" + value.substring(from, to) + "\"");
+        }
+        if (high - low >= limit - size || high - low < 0) {
+            throw tooManyValues(limit);
+        }
+        return high - low + 1;
+    }
+
+    private static ParseException tooManyValues(int limit) {
+        return new ParseException("More than " + limit + " values");
+    }
+
+    private static long parseLong(String value, int from, int to, long min, long max) throws ParseException {
+        if (from >= to) {
+            throw new ParseException("Missing number in \"" + value + "\"");
+        }
+        final boolean negative = value.charAt(from) == '-';
+        int i = negative || value.charAt(from) == '+' ? from + 1 : from;
+        if (i == to) {
+            throw new ParseException("Invalid number \"" + value.substring(from, to) + "\"");
+        }
+        // accumulate negatively so that Long.MIN_VALUE can be represented
+        long result = 0;
+        for (; i < to; i++) {
+            final int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new ParseException("Invalid number \"" + value.substring(from, to) + "\"");
+            }
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw new ParseException("Number \"" + value.substring(from, to) + "\" is out of range");
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new ParseException("Number \"" + value.substring(from, to) + "\" is out of range");
+            }
+            result = -result;
+        }
+        if (result < min || result > max) {
+            throw new ParseException("Number \"" + value.substring(from, to) + "\" is out of range");
+        }
+        return result;
+    }
+
+    private static int grow(int size, int needed, int limit) {
+        return (int) Math.min(Math.min(limit, MAX_ARRAY_SIZE), Math.max((long) size * 2, (long) size + needed));
+    }
+
+    private static int elementEnd(String value, int start) {
+        final int comma = indexOf(value, ',', start, value.length());
+        return comma < 0 ? value.length() : comma;
+    }
+
+    private static int indexOf(String value, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(String value, int from, int to) {
+        while (from < to && value.charAt(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimSpaces(String value, int from, int to) {
+        while (to > from && value.charAt(to - 1) == ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * Receives the values of {@link #decodeIntegral}; only storing them is specific to the
+     * element type.
+     */
+    private abstract static class IntegralSink {
+        private final long min;
+        private final long max;
+
+        IntegralSink(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        abstract int capacity();
+
+        abstract void resize(int capacity);
+
+        /**
+         * Store <code>count</code> consecutive values starting with <code>low</code> at
+         * <code>index</code>.
+         */
+        abstract void store(int index, long low, int count);
+    }
+
+    private static final class IntSink extends IntegralSink {
+        private int[] values;
+
+        IntSink(int capacity) {
+            super(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            values = new int[capacity];
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void store(int index, long low, int count) {
+            int n = (int) low;
+            for (int i = index; i < index + count; i++) {
+                values[i] = n++;
+            }
+        }
+    }
+
+    private static final class LongSink extends IntegralSink {
+        private long[] values;
+
+        LongSink(int capacity) {
+            super(Long.MIN_VALUE, Long.MAX_VALUE);
+            values = new long[capacity];
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void store(int index, long low, int count) {
+            long n = low;
+            for (int i = index; i < index + count; i++) {
+                values[i] = n++;
+            }
+        }
+    }
+}
@@ -20,6 +20,10 @@ package com.phorest.commons.cli;
 
 import org.apache.commons.cli.Option;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * This is a replacement for org.apache.commons.cli.OptionBuilder the use of which
  * results in static methods being accessed via an instance reverence. So, OptionBuilder
@@ -191,6 +195,26 @@ public class OptionBuilder {
         return new RealOptionBuilder().withDescription(description);
     }
 
+    /**
+     * The next Option created will have the specified default value
+     *
+     * @param value the value used when the option is absent
+     * @return an instance of RealOptionBuilder whose methods can be chained.
+     */
+    public static RealOptionBuilder withDefault(String value) {
+        return new RealOptionBuilder().withDefault(value);
+    }
+
+    /**
+     * The next Option created will have a default value computed by <code>supplier</code>
+     *
+     * @param supplier computes the value used when the option is absent
+     * @return an instance of RealOptionBuilder whose methods can be chained.
+     */
+    public static RealOptionBuilder withDefault(Supplier<String> supplier) {
+        return new RealOptionBuilder().withDefault(supplier);
+    }
+
     public static class RealOptionBuilder {
         /**
          * long option
@@ -237,6 +261,11 @@ public class OptionBuilder {
          */
         protected char valueSeparator;
 
+        /**
+         * value used when the option is absent
+         */
+        protected DefaultValue defaultValue;
+
         /**
          * The next Option created will have the following long option name.
          *
@@ -408,6 +437,30 @@ public class OptionBuilder {
             return this;
         }
 
+        /**
+         * The next Option created will have the specified default value
+         *
+         * @param value the value used when the option is absent
+         * @return the RealOptionBuilder instance
+         */
+        public RealOptionBuilder withDefault(String value) {
+            defaultValue = DefaultValue.of(value);
+            return this;
+        }
+
+        /**
+         * The next Option created will have a default value computed by <code>supplier</code>.
+         * The supplier is called at most once, and only if the option is absent and its
+         * value is read through OptionHandler.
+         *
+         * @param supplier computes the value used when the option is absent
+         * @return the RealOptionBuilder instance
+         */
+        public RealOptionBuilder withDefault(Supplier<String> supplier) {
+            defaultValue = DefaultValue.lazy(supplier);
+            return this;
+        }
+
         /**
          * Create an Option using the current settings
          *
@@ -418,19 +471,72 @@ public class OptionBuilder {
             if (optionName == null) {
                 throw new IllegalStateException("Option name not provided (must call withName())");
             }
+            return create(optionName, shortName, description, argumentName);
+        }
+
+        /**
+         * Create an Option using the current settings as a template, replacing every
+         * occurrence of <code>placeholder</code> in the names and description with
+         * <code>value</code>. The builder is left unchanged and can be reused.
+         * <p/>
+         * <b>Example:</b>
+         * <pre>
+         * RealOptionBuilder endpoint = withName("{region}-endpoint")
+         *                                  .withDescription("endpoint for {region}")
+         *                                  .hasArg();
+         * Option option = endpoint.create("{region}", "eu-west-1");
+         * </pre>
+         *
+         * @param placeholder the text to replace
+         * @param value       the replacement
+         * @return the Option instance
+         * @throws IllegalStateException if <code>longOpt</code> has not been set.
+         */
+        public Option create(String placeholder, String value) {
+            if (optionName == null) {
+                throw new IllegalStateException("Option name not provided (must call withName())");
+            }
+            return create(replace(optionName, placeholder, value),
+                    replace(shortName, placeholder, value),
+                    replace(description, placeholder, value),
+                    replace(argumentName, placeholder, value));
+        }
 
-            Option option = new Option(shortName, description);
+        /**
+         * Create one Option per value using the current settings as a template.
+         *
+         * @param placeholder the text to replace
+         * @param values      the replacements
+         * @return the Option instances, in the order of <code>values</code>
+         * @see #create(String, String)
+         */
+        public List<Option> createAll(String placeholder, Collection<String> values) {
+            final List<Option> created = new ArrayList<Option>(values.size());
+            for (String value : values) {
+                created.add(create(placeholder, value));
+            }
+            return created;
+        }
+
+        private Option create(String name, String shortName, String description, String argumentName) {
+            Option option = defaultValue == null
+                    ? new Option(shortName, description)
+                    : DefaultedOption.create(shortName, description, defaultValue);
 
             // set the option properties
-            option.setLongOpt(optionName);
+            option.setLongOpt(name);
             option.setRequired(required);
             option.setOptionalArg(optionalArg);
             option.setArgs(numberOfArgs);
             option.setType(type);
             option.setValueSeparator(valueSeparator);
-            option.setArgName(argumentName != null ? argumentName : optionName.toUpperCase());
+            option.setArgName(argumentName != null ? argumentName : name.toUpperCase());
 
             return option;
         }
+
+        private static String replace(String text, String placeholder, String value) {
+            return text == null ? null : text.replace(placeholder, value);
+        }
     }
 }
@@ -8,17 +8,29 @@
  */
 package com.phorest.commons.cli;
 
-import org.apache.commons.cli.*;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.MissingOptionException;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
 
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ListIterator;
 
 public class OptionHandler {
     private static final String HELP_OPTION = "help";
     private final Options options;
-    private final CommandLineParser parser;
+    private final OptionParser parser;
     private CommandLine commandLine;
     private boolean helpRequested;
+    private ParseCache parseCache;
+    private int numericValueLimit = NumericValues.DEFAULT_LIMIT;
 
     public OptionHandler() {
         this.options = new Options();
@@ -28,9 +40,56 @@ public class OptionHandler {
 
     public OptionHandler add(Option option) {
         options.addOption(option);
+        if (parseCache != null) {
+            parseCache.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Add a family of options at once, e.g. those created from a template with
+     * RealOptionBuilder.createAll.
+     */
+    public OptionHandler addAll(Collection<Option> family) {
+        for (Option option : family) {
+            options.addOption(option);
+        }
+        if (parseCache != null) {
+            parseCache.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Remember up to <code>maximumSize</code> successfully parsed argument vectors so that
+     * parsing an identical vector again returns a copy of the earlier CommandLine without
+     * re-parsing.
+     */
+    public OptionHandler withParseCache(int maximumSize) {
+        parseCache = new ParseCache(maximumSize);
         return this;
     }
 
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
+    /**
+     * Limit the number of values a single option may decode to in getIntArray, getLongArray
+     * and getDoubleArray, counting every value of a range. Defaults to 1,000,000.
+     */
+    public OptionHandler withNumericValueLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Numeric value limit must be positive");
+        }
+        numericValueLimit = limit;
+        return this;
+    }
+
+    public int getNumericValueLimit() {
+        return numericValueLimit;
+    }
+
     public Options getOptions() {
         return options;
     }
@@ -44,8 +103,53 @@ public class OptionHandler {
     }
 
     public CommandLine parse(String[] args, boolean stopAtNonOption) throws ParseException {
-        commandLine = parser.parse(options, args, stopAtNonOption);
-        return commandLine;
+        final ParseResult result = tryParse(args, stopAtNonOption);
+        if (!result.isOk()) {
+            throw ParseFailures.toException(result);
+        }
+        return result.getCommandLine();
+    }
+
+    public ParseResult tryParse(String[] args) {
+        return tryParse(args, false);
+    }
+
+    /**
+     * Parse <code>args</code> reporting failures, including --help, through the returned
+     * result rather than by throwing a ParseException.
+     */
+    public ParseResult tryParse(String[] args, boolean stopAtNonOption) {
+        CommandLine cached = parseCache == null ? null : parseCache.get(args, stopAtNonOption);
+        if (cached != null) {
+            commandLine = cached;
+            return ParseResult.ok(cached);
+        }
+        final ParseResult result = parser.tryParse(options, args, stopAtNonOption);
+        if (result.isOk()) {
+            commandLine = result.getCommandLine();
+            if (parseCache != null) {
+                parseCache.put(args, stopAtNonOption, commandLine);
+            }
+        } else if (result.getStatus() == ParseResult.Status.HELP) {
+            helpRequested = true;
+        }
+        return result;
+    }
+
+    public CommandLine parseCommand(CharSequence command) throws ParseException {
+        return parseCommand(command, false);
+    }
+
+    public CommandLine parseCommand(CharSequence command, boolean stopAtNonOption) throws ParseException {
+        return parse(CommandTokenizer.tokenize(command), stopAtNonOption);
+    }
+
+    public CommandLine parseCommand(ByteBuffer command) throws ParseException {
+        return parseCommand(command, false);
+    }
+
+    public CommandLine parseCommand(ByteBuffer command, boolean stopAtNonOption) throws ParseException {
+        return parse(CommandTokenizer.tokenize(command), stopAtNonOption);
     }
 
     public CommandLine getCommandLine() {
@@ -74,14 +178,7 @@ public class OptionHandler {
     }
 
     public void error(PrintWriter pw, String commandSyntax, String errorMessage) {
-        pw.println("Failed to parse command line.");
-        if (errorMessage != null) {
-            pw.println();
-            pw.println(errorMessage);
-        }
-        pw.println();
-
-        usage(pw, commandSyntax);
+        UsagePrinter.error(pw, options, commandSyntax, errorMessage);
     }
 
     public void usage(String commandSyntax) {
@@ -94,9 +191,7 @@ public class OptionHandler {
     }
 
     public void usage(PrintWriter pw, String commandSyntax) {
-        HelpFormatter formatter = new HelpFormatter();
-        formatter.printHelp(pw, 80, commandSyntax, "\nOptions:", options, 0, 0, null, false);
-        pw.flush();
+        UsagePrinter.usage(pw, options, commandSyntax);
     }
 
     public void errorOrHelp(String commandSyntax, String errorMessage) {
@@ -117,28 +212,116 @@ public class OptionHandler {
         }
     }
 
+    /**
+     * @return the values of the last parsed command line, including defaults, which stay
+     *         valid after this handler parses another command line
+     */
+    public OptionValues getValues() {
+        return new OptionValues(options, getCommandLine(), numericValueLimit);
+    }
+
     public String getOptionValue(String name) {
-        return getCommandLine().getOptionValue(name);
+        return getValues().getOptionValue(name);
+    }
+
+    /**
+     * @see OptionValues#getIntArray(String)
+     */
+    public int[] getIntArray(String name) throws ParseException {
+        return getValues().getIntArray(name);
+    }
+
+    /**
+     * @see OptionValues#getLongArray(String)
+     */
+    public long[] getLongArray(String name) throws ParseException {
+        return getValues().getLongArray(name);
+    }
+
+    /**
+     * @see OptionValues#getDoubleArray(String)
+     */
+    public double[] getDoubleArray(String name) throws ParseException {
+        return getValues().getDoubleArray(name);
     }
 
     public boolean hasOption(String name) {
         return getCommandLine().hasOption(name);
     }
 
-    private class OptionParser extends GnuParser {
+    /**
+     * A GnuParser that records failures instead of throwing them. Only errors raised inside
+     * commons-cli that cannot be anticipated, such as option group conflicts, are caught.
+     */
+    private static class OptionParser extends GnuParser {
+        private ParseResult failure;
+
+        ParseResult tryParse(Options options, String[] args, boolean stopAtNonOption) {
+            failure = null;
+            final CommandLine parsed;
+            try {
+                parsed = parse(options, args, stopAtNonOption);
+            } catch (ParseException e) {
+                return failure != null ? failure : ParseResult.badValue(e);
+            }
+            return failure != null ? failure : ParseResult.ok(parsed);
+        }
+
+        @Override
+        protected void processOption(String arg, ListIterator iter) throws ParseException {
+            if (!getOptions().hasOption(arg)) {
+                fail(ParseResult.unrecognized(arg));
+                return;
+            }
+            super.processOption(arg, iter);
+        }
+
+        @Override
+        public void processArgs(Option opt, ListIterator iter) throws ParseException {
+            if (!opt.hasOptionalArg() && !hasValueAhead(iter)) {
+                fail(ParseResult.missingArgument(opt));
+                return;
+            }
+            super.processArgs(opt, iter);
+        }
+
+        private boolean hasValueAhead(ListIterator iter) {
+            if (!iter.hasNext()) {
+                return false;
+            }
+            final String next = (String) iter.next();
+            iter.previous();
+            return !(next.startsWith("-") && getOptions().hasOption(next));
+        }
+
         @Override
-        protected void checkRequiredOptions() throws MissingOptionException {
+        protected void checkRequiredOptions() {
+            if (failure != null) {
+                return;
+            }
             if (cmd.hasOption(HELP_OPTION)) {
-                helpRequested = true;
-                throw new HelpRequestedException();
+                fail(ParseResult.help());
+                return;
+            }
+            final List<?> required = getRequiredOptions();
+            if (!required.isEmpty()) {
+                final List<String> missing = new ArrayList<String>(required.size());
+                for (Object option : required) {
+                    missing.add(String.valueOf(option));
+                }
+                fail(ParseResult.missing(missing));
             }
-            super.checkRequiredOptions();
         }
 
+        private void fail(ParseResult result) {
+            if (failure == null) {
+                failure = result;
+            }
+        }
     }
 
     public static class HelpRequestedException extends MissingOptionException {
-        private HelpRequestedException() {
+        HelpRequestedException() {
             super("--help was provided");
         }
     }
@@ -0,0 +1,94 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * The values of one parsed command line, falling back to the options' defaults.
+ */
+public class OptionValues {
+    private final Options options;
+    private final CommandLine commandLine;
+    private final int numericValueLimit;
+
+    OptionValues(Options options, CommandLine commandLine, int numericValueLimit) {
+        this.options = options;
+        this.commandLine = commandLine;
+        this.numericValueLimit = numericValueLimit;
+    }
+
+    public CommandLine getCommandLine() {
+        return commandLine;
+    }
+
+    public boolean hasOption(String name) {
+        return commandLine.hasOption(name);
+    }
+
+    public String getOptionValue(String name) {
+        final String value = commandLine.getOptionValue(name);
+        return value != null ? value : getDefaultValue(name);
+    }
+
+    /**
+     * The values of option <code>name</code> decoded as ints. Values may be comma separated
+     * and may use inclusive ranges, e.g. <code>1,2,5-9</code>.
+     *
+     * @return the decoded values, or null if the option is absent and has no default
+     * @throws ParseException if a value is not a valid int or range, or there are too many values
+     * @see OptionHandler#withNumericValueLimit(int)
+     */
+    public int[] getIntArray(String name) throws ParseException {
+        final String[] values = getOptionValues(name);
+        return values == null ? null : NumericValues.decodeInts(values, numericValueLimit);
+    }
+
+    /**
+     * The values of option <code>name</code> decoded as longs. Values may be comma separated
+     * and may use inclusive ranges, e.g. <code>1,2,5-9</code>.
+     *
+     * @return the decoded values, or null if the option is absent and has no default
+     * @throws ParseException if a value is not a valid long or range, or there are too many values
+     * @see OptionHandler#withNumericValueLimit(int)
+     */
+    public long[] getLongArray(String name) throws ParseException {
+        final String[] values = getOptionValues(name);
+        return values == null ? null : NumericValues.decodeLongs(values, numericValueLimit);
+    }
+
+    /**
+     * The values of option <code>name</code> decoded as doubles. Values may be comma separated.
+     *
+     * @return the decoded values, or null if the option is absent and has no default
+     * @throws ParseException if a value is not a valid double, or there are too many values
+     * @see OptionHandler#withNumericValueLimit(int)
+     */
+    public double[] getDoubleArray(String name) throws ParseException {
+        final String[] values = getOptionValues(name);
+        return values == null ? null : NumericValues.decodeDoubles(values, numericValueLimit);
+    }
+
+    private String[] getOptionValues(String name) {
+        final String[] values = commandLine.getOptionValues(name);
+        if (values != null) {
+            return values;
+        }
+        final String defaultValue = getDefaultValue(name);
+        return defaultValue == null ? null : new String[]{defaultValue};
+    }
+
+    private String getDefaultValue(String name) {
+        final Option option = options.getOption(name);
+        return option instanceof DefaultedOption ? ((DefaultedOption) option).getDefaultValue() : null;
+    }
+}
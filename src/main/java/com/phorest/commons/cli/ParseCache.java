@@ -0,0 +1,135 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.CommandLine;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least recently used cache of successfully parsed command lines keyed by
+ * the argument vector. Failed parses are never cached. Safe for concurrent use.
+ * <p/>
+ * A CommandLine can be modified by its callers, e.g. through its argument list, so the cache
+ * stores a private copy and hands every hit its own copy.
+ */
+public class ParseCache {
+    private final int maximumSize;
+    private final Map<Key, CommandLine> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ParseCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum cache size must be positive");
+        }
+        CommandLines.checkSupported();
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<Key, CommandLine>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CommandLine> eldest) {
+                if (size() > ParseCache.this.maximumSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    CommandLine get(String[] args, boolean stopAtNonOption) {
+        final CommandLine commandLine;
+        synchronized (entries) {
+            commandLine = entries.get(new Key(args, stopAtNonOption, false));
+        }
+        if (commandLine == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return CommandLines.copy(commandLine);
+    }
+
+    void put(String[] args, boolean stopAtNonOption, CommandLine commandLine) {
+        final Key key = new Key(args, stopAtNonOption, true);
+        final CommandLine copy = CommandLines.copy(commandLine);
+        synchronized (entries) {
+            entries.put(key, copy);
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private static final class Key {
+        private static final String[] NO_ARGS = new String[0];
+
+        private final String[] args;
+        private final boolean stopAtNonOption;
+        private final int hash;
+
+        /**
+         * @param copy whether to take a private copy of <code>args</code>, required for
+         *             keys that are stored since callers may reuse their arrays.
+         */
+        Key(String[] args, boolean stopAtNonOption, boolean copy) {
+            this.args = args == null ? NO_ARGS : copy ? args.clone() : args;
+            this.stopAtNonOption = stopAtNonOption;
+            this.hash = 31 * Arrays.hashCode(this.args) + (stopAtNonOption ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash
+                    && stopAtNonOption == other.stopAtNonOption
+                    && Arrays.equals(args, other.args);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.MissingArgumentException;
+import org.apache.commons.cli.MissingOptionException;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.UnrecognizedOptionException;
+
+/**
+ * Turns a failed ParseResult into the exception OptionHandler.parse throws. Kept apart from
+ * OptionHandler so the exception classes are only loaded once a parse actually fails.
+ */
+final class ParseFailures {
+    private ParseFailures() {
+        // do nothing
+    }
+
+    static ParseException toException(ParseResult result) {
+        switch (result.getStatus()) {
+            case HELP:
+                return new OptionHandler.HelpRequestedException();
+            case MISSING:
+                return new MissingOptionException(result.getOptions());
+            case UNRECOGNIZED:
+                return new UnrecognizedOptionException(result.getMessage(), result.getOptions().get(0));
+            default:
+                return result.getCause() != null ? result.getCause() : new MissingArgumentException(result.getOption());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of OptionHandler.tryParse: either a CommandLine or a status describing
+ * why the arguments could not be parsed.
+ */
+public final class ParseResult {
+    public enum Status {
+        /**
+         * the arguments were parsed
+         */
+        OK,
+        /**
+         * --help was provided
+         */
+        HELP,
+        /**
+         * one or more required options were not provided
+         */
+        MISSING,
+        /**
+         * an argument does not match any option
+         */
+        UNRECOGNIZED,
+        /**
+         * an option's value is missing or not allowed
+         */
+        BAD_VALUE
+    }
+
+    private final Status status;
+    private final CommandLine commandLine;
+    private final String message;
+    private final List<String> options;
+    private final Option option;
+    private final ParseException cause;
+
+    private ParseResult(Status status, CommandLine commandLine, String message, List<String> options,
+                        Option option, ParseException cause) {
+        this.status = status;
+        this.commandLine = commandLine;
+        this.message = message;
+        this.options = options;
+        this.option = option;
+        this.cause = cause;
+    }
+
+    static ParseResult ok(CommandLine commandLine) {
+        return new ParseResult(Status.OK, commandLine, null, Collections.<String>emptyList(), null, null);
+    }
+
+    static ParseResult help() {
+        return new ParseResult(Status.HELP, null, "--help was provided", Collections.<String>emptyList(), null, null);
+    }
+
+    static ParseResult missing(List<String> missingOptions) {
+        final StringBuilder message = new StringBuilder("Missing required option");
+        message.append(missingOptions.size() == 1 ? "" : "s").append(": ");
+        for (int i = 0; i < missingOptions.size(); i++) {
+            message.append(i == 0 ? "" : ", ").append(missingOptions.get(i));
+        }
+        return new ParseResult(Status.MISSING, null, message.toString(),
+                Collections.unmodifiableList(missingOptions), null, null);
+    }
+
+    static ParseResult unrecognized(String argument) {
+        return new ParseResult(Status.UNRECOGNIZED, null, "Unrecognized option: " + argument,
+                Collections.singletonList(argument), null, null);
+    }
+
+    static ParseResult missingArgument(Option option) {
+        final String key = option.getOpt() != null ? option.getOpt() : option.getLongOpt();
+        return new ParseResult(Status.BAD_VALUE, null, "Missing argument for option: " + key,
+                Collections.singletonList(key), option, null);
+    }
+
+    static ParseResult badValue(ParseException cause) {
+        return new ParseResult(Status.BAD_VALUE, null, cause.getMessage(),
+                Collections.<String>emptyList(), null, cause);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    /**
+     * @return the parsed command line, or null unless the status is OK
+     */
+    public CommandLine getCommandLine() {
+        return commandLine;
+    }
+
+    /**
+     * @return a description of the error, or null if the status is OK
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the options or arguments responsible for the error
+     */
+    public List<String> getOptions() {
+        return options;
+    }
+
+    Option getOption() {
+        return option;
+    }
+
+    ParseException getCause() {
+        return cause;
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+/**
+ * Supplies a value on demand, e.g. a default that is expensive to compute.
+ *
+ * @param <T> the type of the supplied value
+ */
+public interface Supplier<T> {
+    T get();
+}
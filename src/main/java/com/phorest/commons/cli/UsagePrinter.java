@@ -0,0 +1,61 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.PrintWriter;
+
+/**
+ * Renders usage and error messages for OptionHandler. Only loaded when something is printed,
+ * so tools that just parse never load the help formatting classes.
+ */
+final class UsagePrinter {
+    private UsagePrinter() {
+        // do nothing
+    }
+
+    static void error(PrintWriter pw, Options options, String commandSyntax, String errorMessage) {
+        pw.println("Failed to parse command line.");
+        if (errorMessage != null) {
+            pw.println();
+            pw.println(errorMessage);
+        }
+        pw.println();
+
+        usage(pw, options, commandSyntax);
+    }
+
+    static void usage(PrintWriter pw, Options options, String commandSyntax) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp(pw, 80, commandSyntax, "\nOptions:", describeDefaults(options), 0, 0, null, false);
+        pw.flush();
+    }
+
+    /**
+     * @return the options with their defaults appended to the descriptions of copies, leaving
+     *         the registered options untouched
+     */
+    private static Options describeDefaults(Options options) {
+        final Options described = new Options();
+        for (Object element : options.getOptions()) {
+            Option option = (Option) element;
+            if (option instanceof DefaultedOption) {
+                final String description = option.getDescription();
+                final String suffix = "(default: " + ((DefaultedOption) option).describeDefault() + ")";
+                option = (Option) option.clone();
+                option.setDescription(description == null ? suffix : description + " " + suffix);
+            }
+            described.addOption(option);
+        }
+        return described;
+    }
+}
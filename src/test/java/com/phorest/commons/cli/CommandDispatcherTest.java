@@ -0,0 +1,192 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.phorest.commons.cli.OptionBuilder.withName;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CommandDispatcherTest {
+    private CommandDispatcher<String> dispatcher;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() throws Exception {
+        release = new CountDownLatch(1);
+        dispatcher = new CommandDispatcher<String>(1, 1)
+                .register("echo", new OptionHandler().add(withName("text").hasArg().withDefault("default")), new CommandHandler<String>() {
+                    @Override
+                    public String execute(OptionValues values) throws Exception {
+                        return values.getOptionValue("text");
+                    }
+                })
+                .register("block", new OptionHandler(), new CommandHandler<String>() {
+                    @Override
+                    public String execute(OptionValues values) throws Exception {
+                        release.await();
+                        return "released";
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void dispatchShouldRunRegisteredHandler() throws Exception {
+        final Future<String> result = dispatcher.dispatch(new String[]{"echo", "--text", "hello"});
+        assertThat(result.get(5, TimeUnit.SECONDS), is(equalTo("hello")));
+    }
+
+    @Test(expected = ParseException.class)
+    public void unknownCommandShouldFailToParse() throws Exception {
+        dispatcher.dispatch(new String[]{"unknown"});
+    }
+
+    @Test(expected = ParseException.class)
+    public void invalidOptionsShouldFailToParse() throws Exception {
+        dispatcher.dispatch(new String[]{"echo", "--unknown"});
+    }
+
+    @Test
+    public void saturatedDispatcherShouldReject() throws Exception {
+        final Future<String> running = dispatcher.dispatch(new String[]{"block"});
+        final Future<String> queued = dispatcher.dispatch(new String[]{"block"});
+        try {
+            dispatcher.dispatch(new String[]{"block"});
+            Assert.fail("third command should be rejected");
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS), is(equalTo("released")));
+        assertThat(queued.get(5, TimeUnit.SECONDS), is(equalTo("released")));
+        assertThat(dispatcher.dispatch(new String[]{"echo", "--text", "again"}).get(5, TimeUnit.SECONDS),
+                is(equalTo("again")));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void timedOutCommandShouldBeCancelled() throws Exception {
+        final Future<String> result = dispatcher.dispatch(new String[]{"block"}, 50, TimeUnit.MILLISECONDS);
+        result.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shutDownDispatcherShouldRejectWithoutRunningHandler() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AtomicInteger runs = new AtomicInteger();
+        final CommandDispatcher<String> callerOwned = new CommandDispatcher<String>(executor, 1, 1)
+                .register("count", new OptionHandler(), new CommandHandler<String>() {
+                    @Override
+                    public String execute(OptionValues values) throws Exception {
+                        runs.incrementAndGet();
+                        return "counted";
+                    }
+                });
+        try {
+            callerOwned.shutdown();
+            for (long timeout : new long[]{0, 1000}) {
+                try {
+                    callerOwned.dispatch(new String[]{"count"}, timeout, TimeUnit.MILLISECONDS);
+                    Assert.fail("dispatch after shutdown should be rejected");
+                } catch (RejectedExecutionException expected) {
+                    // expected
+                }
+            }
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertThat(runs.get(), is(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void handlerShouldSeeItsOwnValuesAndDefaults() throws Exception {
+        final Future<String> defaulted = dispatcher.dispatch(new String[]{"echo"});
+        final Future<String> given = dispatcher.dispatch(new String[]{"echo", "--text", "given"});
+        assertThat(defaulted.get(5, TimeUnit.SECONDS), is(equalTo("default")));
+        assertThat(given.get(5, TimeUnit.SECONDS), is(equalTo("given")));
+    }
+
+    @Test
+    public void completedCommandShouldFreeItsSlotBeforeGetReturns() throws Exception {
+        final CommandDispatcher<String> single = new CommandDispatcher<String>(1, 0)
+                .register("echo", new OptionHandler().add(withName("text").hasArg()), new CommandHandler<String>() {
+                    @Override
+                    public String execute(OptionValues values) throws Exception {
+                        return values.getOptionValue("text");
+                    }
+                });
+        try {
+            for (int i = 0; i < 500; i++) {
+                assertThat(single.dispatch(new String[]{"echo", "--text", "again"}).get(5, TimeUnit.SECONDS),
+                        is(equalTo("again")));
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void cancellingQueuedCommandShouldFreeItsSlot() throws Exception {
+        final Future<String> running = dispatcher.dispatch(new String[]{"block"});
+        final Future<String> queued = dispatcher.dispatch(new String[]{"block"});
+        assertThat(queued.cancel(false), is(true));
+        final Future<String> replacement = dispatcher.dispatch(new String[]{"echo", "--text", "next"});
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS), is(equalTo("released")));
+        assertThat(replacement.get(5, TimeUnit.SECONDS), is(equalTo("next")));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void timeoutShouldStillCancelCommandAfterShutdown() throws Exception {
+        final Future<String> result = dispatcher.dispatch(new String[]{"block"}, 200, TimeUnit.MILLISECONDS);
+        dispatcher.shutdown();
+        result.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void failedDispatchShouldNotHoldASlot() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                dispatcher.dispatch(new String[]{"block"}, 100, null);
+                Assert.fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+        final Future<String> running = dispatcher.dispatch(new String[]{"block"});
+        final Future<String> queued = dispatcher.dispatch(new String[]{"echo", "--text", "queued"});
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS), is(equalTo("released")));
+        assertThat(queued.get(5, TimeUnit.SECONDS), is(equalTo("queued")));
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.apache.commons.cli.ParseException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CommandTokenizerTest {
+    @Test
+    public void tokenizerShouldSplitOnWhitespace() throws Exception {
+        assertThat(CommandTokenizer.tokenize("  --domain\teu-west-1 \n --region  "),
+                is(equalTo(new String[]{"--domain", "eu-west-1", "--region"})));
+    }
+
+    @Test
+    public void tokenizerShouldAcceptNullAndBlank() throws Exception {
+        assertThat(CommandTokenizer.tokenize((CharSequence) null).length, is(0));
+        assertThat(CommandTokenizer.tokenize("   ").length, is(0));
+    }
+
+    @Test
+    public void tokenizerShouldHonourQuotesAndEscapes() throws Exception {
+        assertThat(CommandTokenizer.tokenize("a' b \\c'\"d \\\"e\\x\" f\\ g ''"),
+                is(equalTo(new String[]{"a b \\cd \"e\\x", "f g", ""})));
+    }
+
+    @Test
+    public void tokenizerShouldDropEscapedNewlines() throws Exception {
+        assertThat(CommandTokenizer.tokenize("--do\\\nmain \"eu\\\n-west\""),
+                is(equalTo(new String[]{"--domain", "eu-west"})));
+    }
+
+    @Test
+    public void tokenizerShouldDecodeUtf8() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.wrap("--name 'Se\u00e1n \u00d3g'".getBytes("UTF-8"));
+        assertThat(CommandTokenizer.tokenize(buffer), is(equalTo(new String[]{"--name", "Se\u00e1n \u00d3g"})));
+        assertThat(buffer.position(), is(0));
+    }
+
+    @Test
+    public void tokenizerShouldHonourQuotesAndEscapesInEncodedCommand() throws Exception {
+        final byte[] prefix = "ignored ".getBytes("UTF-8");
+        final byte[] command = "--name \\\u00e9ire 'Se\u00e1n '\"\u00d3g\\\"\" plain\u00e9".getBytes("UTF-8");
+        final ByteBuffer buffer = ByteBuffer.allocate(prefix.length + command.length);
+        buffer.put(prefix).put(command).position(prefix.length);
+        assertThat(CommandTokenizer.tokenize(buffer),
+                is(equalTo(new String[]{"--name", "\u00e9ire", "Se\u00e1n \u00d3g\"", "plain\u00e9"})));
+        assertThat(buffer.position(), is(prefix.length));
+    }
+
+    @Test(expected = ParseException.class)
+    public void unterminatedQuoteShouldFail() throws Exception {
+        CommandTokenizer.tokenize("--domain 'eu-west-1");
+    }
+
+    @Test(expected = ParseException.class)
+    public void danglingEscapeShouldFail() throws Exception {
+        CommandTokenizer.tokenize("--domain \\");
+    }
+
+    @Test(expected = ParseException.class)
+    public void malformedUtf8ShouldFail() throws Exception {
+        CommandTokenizer.tokenize(ByteBuffer.wrap(new byte[]{'-', '-', (byte) 0xC3}));
+    }
+}
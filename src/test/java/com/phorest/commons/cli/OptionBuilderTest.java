@@ -11,6 +11,9 @@ package com.phorest.commons.cli;
 import org.apache.commons.cli.Option;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -32,6 +35,13 @@ public class OptionBuilderTest {
         assertThat(OptionBuilder.hasOptionalArg(), is(instanceOf(OptionBuilder.RealOptionBuilder.class)));
         assertThat(OptionBuilder.hasOptionalArgs(), is(instanceOf(OptionBuilder.RealOptionBuilder.class)));
         assertThat(OptionBuilder.hasOptionalArgs(2), is(instanceOf(OptionBuilder.RealOptionBuilder.class)));
+        assertThat(OptionBuilder.withDefault("foo"), is(instanceOf(OptionBuilder.RealOptionBuilder.class)));
+        assertThat(OptionBuilder.withDefault(new Supplier<String>() {
+            @Override
+            public String get() {
+                return "foo";
+            }
+        }), is(instanceOf(OptionBuilder.RealOptionBuilder.class)));
     }
 
     @Test(expected = IllegalStateException.class)
@@ -105,4 +115,29 @@ public class OptionBuilderTest {
                 .create();
         assertThat(option.hasOptionalArg(), is(true));
     }
+
+    @Test
+    public void builderShouldNotChangeDescriptionForDefault() throws Exception {
+        final Option option = OptionBuilder
+                .withName("longName")
+                .withDescription("description")
+                .withDefault("value")
+                .create();
+        assertThat(option.getDescription(), is(equalTo("description")));
+    }
+
+    @Test
+    public void templateShouldCreateOptionsWithSubstitutions() throws Exception {
+        final OptionBuilder.RealOptionBuilder template = OptionBuilder
+                .withName("{region}-endpoint")
+                .withDescription("endpoint for {region}")
+                .hasArg();
+        final List<Option> options = template.createAll("{region}", Arrays.asList("eu-west-1", "us-east-1"));
+        assertThat(options.size(), is(2));
+        assertThat(options.get(0).getLongOpt(), is(equalTo("eu-west-1-endpoint")));
+        assertThat(options.get(0).getArgName(), is(equalTo("EU-WEST-1-ENDPOINT")));
+        assertThat(options.get(1).getDescription(), is(equalTo("endpoint for us-east-1")));
+        assertThat(options.get(1).hasArg(), is(true));
+        assertThat(template.create().getLongOpt(), is(equalTo("{region}-endpoint")));
+    }
 }
@@ -0,0 +1,111 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (C) 2014 Phorest, Inc. All rights reserved.
+ *
+ * http://www.phorest.com/
+ *
+ */
+package com.phorest.commons.cli;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.phorest.commons.cli.OptionBuilder.withName;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Parses in a fresh JVM and checks that a run which never prints help does not load the
+ * help and error classes, and that the classes loaded from commons-cli and this wrapper up
+ * to the first parse stay within budget. The total number of loaded classes and the time to
+ * first parse are reported.
+ */
+public class OptionHandlerStartupTest {
+    private static final String[] HELP_CLASSES = {
+            "org.apache.commons.cli.HelpFormatter",
+            "com.phorest.commons.cli.UsagePrinter",
+            "com.phorest.commons.cli.ParseFailures",
+            "com.phorest.commons.cli.OptionHandler$HelpRequestedException",
+            "com.phorest.commons.cli.DefaultedOption"
+    };
+
+    private static final String PARSED = "parsed";
+    private static final String TIMING = "time to first parse ";
+    private static final int CLI_CLASS_BUDGET = 22;
+
+    @Test
+    public void parseOnlyRunShouldNotLoadHelpClasses() throws Exception {
+        final List<String> output = runParseOnly();
+        int loaded = 0;
+        int cliLoaded = 0;
+        String timing = null;
+        for (int i = 0; i < output.size(); i++) {
+            final String line = output.get(i);
+            if (line.equals(PARSED)) {
+                for (String after : output.subList(i + 1, output.size())) {
+                    if (after.startsWith(TIMING)) {
+                        timing = after;
+                    }
+                }
+                break;
+            }
+            if (!line.contains("[class,load]") && !line.startsWith("[Loaded ")) {
+                continue;
+            }
+            loaded++;
+            if (line.contains(" com.phorest.commons.cli.") || line.contains(" org.apache.commons.cli.")) {
+                cliLoaded++;
+            }
+            for (String helpClass : HELP_CLASSES) {
+                assertThat(line, not(containsString(helpClass + " ")));
+            }
+        }
+        assertThat(timing, is(notNullValue()));
+        System.out.println("Parse-only startup: " + timing + ", " + loaded + " classes loaded, "
+                + cliLoaded + " of them from commons-cli and this wrapper");
+        assertThat("commons-cli and wrapper classes loaded before first parse",
+                cliLoaded <= CLI_CLASS_BUDGET, is(true));
+    }
+
+    private static List<String> runParseOnly() throws Exception {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final Process process = new ProcessBuilder(java, "-verbose:class",
+                "-cp", System.getProperty("java.class.path"), ParseOnly.class.getName())
+                .redirectErrorStream(true)
+                .start();
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        assertThat(process.waitFor(), is(0));
+        return lines;
+    }
+
+    public static class ParseOnly {
+        public static void main(String[] args) throws Exception {
+            final long start = System.nanoTime();
+            final OptionHandler optionHandler = new OptionHandler()
+                    .add(withName("region").hasArg().isRequired())
+                    .add(withName("domain").hasArg());
+            optionHandler.parse(new String[]{"--region", "eu-west-1"});
+            optionHandler.getOptionValue("region");
+            final long elapsed = System.nanoTime() - start;
+
+            // print a constant first so that formatting the timing loads no classes before it
+            System.out.println(PARSED);
+            System.out.println(TIMING + elapsed / 1000 + "us");
+        }
+    }
+}
@@ -11,13 +11,19 @@ package com.phorest.commons.cli;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.MissingArgumentException;
+import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.UnrecognizedOptionException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.phorest.commons.cli.OptionBuilder.withName;
 import static org.hamcrest.CoreMatchers.*;
@@ -100,6 +106,313 @@ public class OptionHandlerTest {
         assertThat(optionHandler.getOptionValue("domain"), is(nullValue()));
     }
 
+    @Test
+    public void handlerShouldParseCommandString() throws Exception {
+        optionHandler.add(withName("domain").hasArg());
+        optionHandler.parseCommand("--domain 'eu west 1'");
+        assertThat(optionHandler.getOptionValue("domain"), is(equalTo("eu west 1")));
+    }
+
+    @Test
+    public void handlerShouldParseEncodedCommand() throws Exception {
+        optionHandler.add(withName("domain").hasArg());
+        optionHandler.parseCommand(ByteBuffer.wrap("--domain \"eu-west-1\"".getBytes("UTF-8")));
+        assertThat(optionHandler.getOptionValue("domain"), is(equalTo("eu-west-1")));
+    }
+
+    @Test
+    public void absentOptionShouldGiveDefault() throws Exception {
+        optionHandler.add(withName("domain").hasArg().withDefault("eu-west-1"));
+        optionHandler.parse(new String[]{});
+        assertThat(optionHandler.hasOption("domain"), is(false));
+        assertThat(optionHandler.getOptionValue("domain"), is(equalTo("eu-west-1")));
+    }
+
+    @Test
+    public void suppliedDefaultShouldBeComputedOnceAndOnlyWhenRead() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        optionHandler.add(withName("domain").hasArg().withDefault(new Supplier<String>() {
+            @Override
+            public String get() {
+                calls.incrementAndGet();
+                return "eu-west-1";
+            }
+        }));
+        optionHandler.parse(new String[]{"--domain", "us-east-1"});
+        assertThat(optionHandler.getOptionValue("domain"), is(equalTo("us-east-1")));
+        assertThat(calls.get(), is(0));
+
+        optionHandler.parse(new String[]{});
+        assertThat(calls.get(), is(0));
+        assertThat(optionHandler.getOptionValue("domain"), is(equalTo("eu-west-1")));
+        assertThat(optionHandler.getOptionValue("domain"), is(equalTo("eu-west-1")));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void usageShouldContainDefault() throws Exception {
+        optionHandler.add(withName("domain").hasArg().withDescription("help text").withDefault("eu-west-1"));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        optionHandler.usage(new PrintWriter(baos), "syntax");
+        assertThat(baos.toString(), containsString("help text (default: eu-west-1)"));
+        assertThat(optionHandler.getOptions().getOption("domain").getDescription(), is(equalTo("help text")));
+    }
+
+    @Test
+    public void usageShouldNotComputeSuppliedDefault() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        optionHandler.add(withName("domain").hasArg().withDescription("help text").withDefault(new Supplier<String>() {
+            @Override
+            public String get() {
+                calls.incrementAndGet();
+                return "eu-west-1";
+            }
+        }));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        optionHandler.usage(new PrintWriter(baos), "syntax");
+        assertThat(calls.get(), is(0));
+        assertThat(baos.toString(), containsString("help text (default: computed when needed)"));
+
+        optionHandler.parse(new String[]{});
+        optionHandler.getOptionValue("domain");
+        baos = new ByteArrayOutputStream();
+        optionHandler.usage(new PrintWriter(baos), "syntax");
+        assertThat(calls.get(), is(1));
+        assertThat(baos.toString(), containsString("help text (default: eu-west-1)"));
+    }
+
+    @Test
+    public void cachedParseShouldGiveSameValues() throws Exception {
+        optionHandler.withParseCache(10).add(withName("domain").hasArg());
+        final String[] args = {"--domain", "eu-west-1"};
+        optionHandler.parse(args);
+        args[1] = "us-east-1";
+        assertThat(optionHandler.parse(new String[]{"--domain", "eu-west-1"}).getOptionValue("domain"),
+                is(equalTo("eu-west-1")));
+        assertThat(optionHandler.parse(args).getOptionValue("domain"), is(equalTo("us-east-1")));
+        assertThat(optionHandler.getOptionValue("domain"), is(equalTo("us-east-1")));
+        assertThat(optionHandler.getParseCache().getHitCount(), is(1L));
+        assertThat(optionHandler.getParseCache().getMissCount(), is(2L));
+    }
+
+    @Test
+    public void mutatingCachedResultShouldNotAffectNextHit() throws Exception {
+        optionHandler.withParseCache(10).add(withName("domain").hasArg());
+        final String[] args = {"--domain", "eu-west-1", "sub", "arg"};
+        final CommandLine first = optionHandler.parse(args);
+        first.getArgList().remove(0);
+        first.getOptions()[0].setArgName("CHANGED");
+
+        final CommandLine hit = optionHandler.parse(args);
+        hit.getArgList().remove(0);
+
+        final CommandLine next = optionHandler.parse(args);
+        assertThat(optionHandler.getParseCache().getHitCount(), is(2L));
+        assertThat(next.getArgs(), is(equalTo(new String[]{"sub", "arg"})));
+        assertThat(next.getOptions()[0].getArgName(), is(equalTo("DOMAIN")));
+        assertThat(next.getOptionValue("domain"), is(equalTo("eu-west-1")));
+    }
+
+    @Test
+    public void parseCacheShouldEvictLeastRecentlyUsed() throws Exception {
+        optionHandler.withParseCache(2).add(withName("domain").hasArg());
+        optionHandler.parse(new String[]{"--domain", "a"});
+        optionHandler.parse(new String[]{"--domain", "b"});
+        optionHandler.parse(new String[]{"--domain", "a"});
+        optionHandler.parse(new String[]{"--domain", "c"});
+        assertThat(optionHandler.getParseCache().size(), is(2));
+        assertThat(optionHandler.getParseCache().getEvictionCount(), is(1L));
+        optionHandler.parse(new String[]{"--domain", "a"});
+        assertThat(optionHandler.getParseCache().getHitCount(), is(2L));
+    }
+
+    @Test
+    public void addingOptionShouldClearParseCache() throws Exception {
+        optionHandler.withParseCache(10).add(withName("domain").hasArg());
+        optionHandler.parse(new String[]{"--domain", "a"});
+        optionHandler.add(withName("region").hasArg());
+        assertThat(optionHandler.getParseCache().size(), is(0));
+    }
+
+    @Test
+    public void failedParseShouldNotBeCached() throws Exception {
+        optionHandler.withParseCache(10);
+        try {
+            optionHandler.parse(new String[]{"--help"});
+        } catch (OptionHandler.HelpRequestedException e) {
+            assertThat(optionHandler.getParseCache().size(), is(0));
+            return;
+        }
+        Assert.fail("--help should not parse");
+    }
+
+    @Test
+    public void numericValuesShouldDecodeToPrimitiveArrays() throws Exception {
+        optionHandler
+                .add(withName("ids").hasArgs())
+                .add(withName("offsets").hasArgs())
+                .add(withName("weights").hasArgs());
+        optionHandler.parse(new String[]{
+                "--ids", "1,2,5-9", "-3--1",
+                "--offsets", "9223372036854775807", "-9223372036854775808",
+                "--weights", "0.5, 1e3"
+        });
+        assertThat(optionHandler.getIntArray("ids"), is(equalTo(new int[]{1, 2, 5, 6, 7, 8, 9, -3, -2, -1})));
+        assertThat(optionHandler.getLongArray("offsets"), is(equalTo(new long[]{Long.MAX_VALUE, Long.MIN_VALUE})));
+        assertThat(optionHandler.getDoubleArray("weights")[1], is(equalTo(1000.0)));
+        assertThat(optionHandler.getIntArray("unknown"), is(nullValue()));
+    }
+
+    @Test
+    public void numericValuesShouldFallBackToDefault() throws Exception {
+        optionHandler.add(withName("ids").hasArgs().withDefault("1-3"));
+        optionHandler.parse(new String[]{});
+        assertThat(optionHandler.getLongArray("ids"), is(equalTo(new long[]{1, 2, 3})));
+    }
+
+    @Test
+    public void intRangesShouldReachIntLimits() throws Exception {
+        optionHandler.add(withName("ids").hasArgs());
+        optionHandler.parse(new String[]{"--ids", "2147483646-2147483647,-2147483648--2147483647"});
+        assertThat(optionHandler.getIntArray("ids"),
+                is(equalTo(new int[]{Integer.MAX_VALUE - 1, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1})));
+    }
+
+    @Test(expected = ParseException.class)
+    public void outOfRangeIntShouldFail() throws Exception {
+        optionHandler.add(withName("ids").hasArgs());
+        optionHandler.parse(new String[]{"--ids", "2147483648"});
+        optionHandler.getIntArray("ids");
+    }
+
+    @Test(expected = ParseException.class)
+    public void descendingRangeShouldFail() throws Exception {
+        optionHandler.add(withName("ids").hasArgs());
+        optionHandler.parse(new String[]{"--ids", "9-5"});
+        optionHandler.getIntArray("ids");
+    }
+
+    @Test(expected = ParseException.class)
+    public void hugeRangeShouldFail() throws Exception {
+        optionHandler.add(withName("ids").hasArgs());
+        optionHandler.parse(new String[]{"--ids", "0-2000000000"});
+        optionHandler.getIntArray("ids");
+    }
+
+    @Test
+    public void numericValueLimitShouldCountAllValues() throws Exception {
+        optionHandler.add(withName("ids").hasArgs()).withNumericValueLimit(5);
+        optionHandler.parse(new String[]{"--ids", "1-3,7,8"});
+        assertThat(optionHandler.getLongArray("ids"), is(equalTo(new long[]{1, 2, 3, 7, 8})));
+        optionHandler.parse(new String[]{"--ids", "1-3,7-9"});
+        try {
+            optionHandler.getLongArray("ids");
+            Assert.fail("six values should exceed the limit");
+        } catch (ParseException expected) {
+            // expected
+        }
+        optionHandler.parse(new String[]{"--ids", "1,2,3,4,5,6"});
+        try {
+            optionHandler.getDoubleArray("ids");
+            Assert.fail("six values should exceed the limit");
+        } catch (ParseException expected) {
+            // expected
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void invalidNumberShouldFail() throws Exception {
+        optionHandler.add(withName("ids").hasArgs());
+        optionHandler.parse(new String[]{"--ids", "1,x"});
+        optionHandler.getLongArray("ids");
+    }
+
+    @Test
+    public void tryParseShouldReportSuccess() throws Exception {
+        optionHandler.add(withName("domain").hasArg());
+        final ParseResult result = optionHandler.tryParse(new String[]{"--domain", "eu-west-1"});
+        assertThat(result.getStatus(), is(ParseResult.Status.OK));
+        assertThat(result.getCommandLine().getOptionValue("domain"), is(equalTo("eu-west-1")));
+        assertThat(optionHandler.getOptionValue("domain"), is(equalTo("eu-west-1")));
+    }
+
+    @Test
+    public void tryParseShouldReportHelp() throws Exception {
+        optionHandler.add(withName("domain").hasArg().isRequired());
+        final ParseResult result = optionHandler.tryParse(new String[]{"--help"});
+        assertThat(result.getStatus(), is(ParseResult.Status.HELP));
+        assertThat(result.getCommandLine(), is(nullValue()));
+        assertThat(optionHandler.isHelpRequested(), is(true));
+    }
+
+    @Test
+    public void tryParseShouldReportMissingOptions() throws Exception {
+        optionHandler.add(withName("domain").hasArg().isRequired()).add(withName("region").isRequired());
+        final ParseResult result = optionHandler.tryParse(new String[]{});
+        assertThat(result.getStatus(), is(ParseResult.Status.MISSING));
+        assertThat(result.getOptions(), is(equalTo(Arrays.asList("domain", "region"))));
+        assertThat(result.getMessage(), is(equalTo("Missing required options: domain, region")));
+    }
+
+    @Test
+    public void tryParseShouldReportUnrecognizedOption() throws Exception {
+        final ParseResult result = optionHandler.tryParse(new String[]{"--bogus", "--help"});
+        assertThat(result.getStatus(), is(ParseResult.Status.UNRECOGNIZED));
+        assertThat(result.getOptions(), is(equalTo(Arrays.asList("--bogus"))));
+    }
+
+    @Test
+    public void tryParseShouldReportMissingArgument() throws Exception {
+        optionHandler.add(withName("domain").hasArg()).add(withName("region"));
+        final ParseResult result = optionHandler.tryParse(new String[]{"--domain", "--region"});
+        assertThat(result.getStatus(), is(ParseResult.Status.BAD_VALUE));
+        assertThat(result.getOptions(), is(equalTo(Arrays.asList("domain"))));
+    }
+
+    @Test
+    public void parseShouldThrowForMissingOptions() throws Exception {
+        optionHandler.add(withName("domain").hasArg().isRequired());
+        try {
+            optionHandler.parse(new String[]{});
+            Assert.fail("parse should fail");
+        } catch (MissingOptionException e) {
+            assertThat(e.getMissingOptions(), is(equalTo((java.util.List) Arrays.asList("domain"))));
+            assertThat(e.getMessage(), is(equalTo("Missing required option: domain")));
+        }
+    }
+
+    @Test(expected = UnrecognizedOptionException.class)
+    public void parseShouldThrowForUnrecognizedOption() throws Exception {
+        optionHandler.parse(new String[]{"--bogus"});
+    }
+
+    @Test(expected = MissingArgumentException.class)
+    public void parseShouldThrowForMissingArgument() throws Exception {
+        optionHandler.add(withName("domain").hasArg());
+        optionHandler.parse(new String[]{"--domain"});
+    }
+
+    @Test
+    public void handlerShouldAddAFamilyOfOptions() throws Exception {
+        optionHandler.withParseCache(10);
+        optionHandler.parse(new String[]{});
+        optionHandler.addAll(withName("{region}-timeout").hasArg().createAll("{region}",
+                Arrays.asList("eu-west-1", "us-east-1")));
+        assertThat(optionHandler.getParseCache().size(), is(0));
+        optionHandler.parse(new String[]{"--us-east-1-timeout", "30"});
+        assertThat(optionHandler.getOptionValue("us-east-1-timeout"), is(equalTo("30")));
+    }
+
+    @Test
+    public void valuesShouldStayBoundToTheirParse() throws Exception {
+        optionHandler.add(withName("domain").hasArg().withDefault("eu-west-1"));
+        optionHandler.parse(new String[]{"--domain", "us-east-1"});
+        final OptionValues first = optionHandler.getValues();
+        optionHandler.parse(new String[]{});
+        assertThat(first.getOptionValue("domain"), is(equalTo("us-east-1")));
+        assertThat(optionHandler.getValues().getOptionValue("domain"), is(equalTo("eu-west-1")));
+    }
+
     @Test
     public void errorMessageShouldContainUsage() throws Exception {
         optionHandler.add(withName("domain").hasArg().withDescription("help text"));